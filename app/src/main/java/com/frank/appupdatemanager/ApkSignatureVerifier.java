@@ -0,0 +1,586 @@
+package com.frank.appupdatemanager;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.content.pm.PackageInfoCompat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a downloaded APK is signed by the same certificates as the running app.
+ * <p>
+ * If the APK has an APK Signing Block, its v2 signature is verified here and the 1 MB chunk
+ * digests of the APK contents are computed in parallel. Otherwise the JAR signature is
+ * verified by {@link PackageManager#getPackageArchiveInfo(String, int)}. The APK must also have
+ * a higher version code than the running app, so an older APK signed with the same key is rejected.
+ */
+final class ApkSignatureVerifier {
+
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_CD_SIZE_OFFSET = 12;
+    private static final int EOCD_CD_OFFSET_OFFSET = 16;
+    private static final int EOCD_COMMENT_LENGTH_OFFSET = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private static final long APK_SIG_BLOCK_MAGIC_LO = 0x20676953204b5041L;
+    private static final long APK_SIG_BLOCK_MAGIC_HI = 0x3234206b636f6c42L;
+    private static final int APK_SIG_BLOCK_MIN_SIZE = 32;
+    private static final int APK_SIGNATURE_SCHEME_V2_BLOCK_ID = 0x7109871a;
+
+    private static final int SIGNATURE_RSA_PSS_WITH_SHA256 = 0x0101;
+    private static final int SIGNATURE_RSA_PSS_WITH_SHA512 = 0x0102;
+    private static final int SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256 = 0x0103;
+    private static final int SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA512 = 0x0104;
+    private static final int SIGNATURE_ECDSA_WITH_SHA256 = 0x0201;
+    private static final int SIGNATURE_ECDSA_WITH_SHA512 = 0x0202;
+    private static final int SIGNATURE_DSA_WITH_SHA256 = 0x0301;
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ApkSignatureVerifier #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            // Below the UI thread, maps to THREAD_PRIORITY_BACKGROUND on Android.
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    };
+
+    private ApkSignatureVerifier() {
+    }
+
+    /**
+     * @return true if the APK belongs to this app and is signed by the same certificates
+     */
+    static boolean verify(Context context, File apkFile) throws IOException {
+        PackageManager packageManager = context.getPackageManager();
+        PackageInfo installedInfo;
+        try {
+            installedInfo = packageManager.getPackageInfo(context.getPackageName(),
+                    PackageManager.GET_SIGNATURES);
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+        List<byte[]> certificates;
+        RandomAccessFile apk = new RandomAccessFile(apkFile, "r");
+        try {
+            certificates = verifyV2Signature(apk);
+        } catch (SignatureNotFoundException e) {
+            certificates = null;
+        } catch (GeneralSecurityException | BufferUnderflowException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            apk.close();
+        }
+        PackageInfo archiveInfo = packageManager.getPackageArchiveInfo(apkFile.getAbsolutePath(),
+                certificates == null ? PackageManager.GET_SIGNATURES : 0);
+        if (archiveInfo == null || !context.getPackageName().equals(archiveInfo.packageName)
+                || PackageInfoCompat.getLongVersionCode(archiveInfo)
+                <= PackageInfoCompat.getLongVersionCode(installedInfo)) {
+            return false;
+        }
+        if (certificates == null) {
+            if (archiveInfo.signatures == null) {
+                return false;
+            }
+            certificates = new ArrayList<>();
+            for (Signature signature : archiveInfo.signatures) {
+                certificates.add(signature.toByteArray());
+            }
+        }
+        return sameCertificates(installedInfo.signatures, certificates);
+    }
+
+    private static boolean sameCertificates(Signature[] expected, List<byte[]> actual) {
+        if (expected == null || expected.length == 0 || actual.isEmpty()) {
+            return false;
+        }
+        List<byte[]> expectedCertificates = new ArrayList<>();
+        for (Signature signature : expected) {
+            expectedCertificates.add(signature.toByteArray());
+        }
+        return containsAll(expectedCertificates, actual) && containsAll(actual, expectedCertificates);
+    }
+
+    private static boolean containsAll(List<byte[]> certificates, List<byte[]> others) {
+        for (byte[] other : others) {
+            boolean found = false;
+            for (byte[] certificate : certificates) {
+                if (Arrays.equals(certificate, other)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the DER encoded leaf certificate of each signer
+     */
+    @VisibleForTesting
+    static List<byte[]> verifyV2Signature(RandomAccessFile apk)
+            throws IOException, GeneralSecurityException, SignatureNotFoundException {
+        FileChannel channel = apk.getChannel();
+        long eocdOffset = findEocdOffset(apk);
+        ByteBuffer eocd = read(channel, eocdOffset, (int) (apk.length() - eocdOffset));
+        long cdOffset = eocd.getInt(EOCD_CD_OFFSET_OFFSET) & 0xffffffffL;
+        long cdSize = eocd.getInt(EOCD_CD_SIZE_OFFSET) & 0xffffffffL;
+        if (cdOffset + cdSize != eocdOffset || cdOffset < APK_SIG_BLOCK_MIN_SIZE) {
+            throw new SignatureNotFoundException();
+        }
+        ByteBuffer footer = read(channel, cdOffset - 24, 24);
+        if (footer.getLong(8) != APK_SIG_BLOCK_MAGIC_LO
+                || footer.getLong(16) != APK_SIG_BLOCK_MAGIC_HI) {
+            throw new SignatureNotFoundException();
+        }
+        long blockSize = footer.getLong(0);
+        if (blockSize < 24 || blockSize > Integer.MAX_VALUE - 8 || blockSize + 8 > cdOffset) {
+            throw new GeneralSecurityException("Invalid APK Signing Block size");
+        }
+        long blockOffset = cdOffset - blockSize - 8;
+        ByteBuffer block = read(channel, blockOffset, (int) (blockSize + 8));
+        if (block.getLong(0) != blockSize) {
+            throw new GeneralSecurityException("APK Signing Block sizes mismatch");
+        }
+        ByteBuffer signatureScheme = findV2Block(slice(block, 8, block.capacity() - 24));
+
+        List<byte[]> certificates = new ArrayList<>();
+        List<String> digestAlgorithms = new ArrayList<>();
+        List<byte[]> expectedDigests = new ArrayList<>();
+        ByteBuffer signers = getLengthPrefixedSlice(signatureScheme);
+        if (!signers.hasRemaining()) {
+            throw new GeneralSecurityException("No signers");
+        }
+        while (signers.hasRemaining()) {
+            verifySigner(getLengthPrefixedSlice(signers), certificates,
+                    digestAlgorithms, expectedDigests);
+        }
+
+        ByteBuffer modifiedEocd = ByteBuffer.allocate(eocd.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        modifiedEocd.put(eocd.duplicate());
+        modifiedEocd.putInt(EOCD_CD_OFFSET_OFFSET, (int) blockOffset);
+        modifiedEocd.flip();
+        DataSource[] contents = new DataSource[]{
+                new FileDataSource(channel, 0, blockOffset),
+                new FileDataSource(channel, cdOffset, cdSize),
+                new ByteBufferDataSource(modifiedEocd)
+        };
+        for (int i = 0; i < digestAlgorithms.size(); i++) {
+            byte[] actual = computeContentDigest(digestAlgorithms.get(i), contents);
+            if (!MessageDigest.isEqual(expectedDigests.get(i), actual)) {
+                throw new GeneralSecurityException("APK contents digest mismatch");
+            }
+        }
+        return certificates;
+    }
+
+    private static void verifySigner(ByteBuffer signer, List<byte[]> certificates,
+                                     List<String> digestAlgorithms, List<byte[]> expectedDigests)
+            throws GeneralSecurityException {
+        ByteBuffer signedData = getLengthPrefixedSlice(signer);
+        ByteBuffer signatures = getLengthPrefixedSlice(signer);
+        byte[] publicKeyBytes = readLengthPrefixedBytes(signer);
+
+        int bestAlgorithm = -1;
+        byte[] bestSignature = null;
+        List<Integer> signatureAlgorithms = new ArrayList<>();
+        while (signatures.hasRemaining()) {
+            ByteBuffer signature = getLengthPrefixedSlice(signatures);
+            int algorithm = signature.getInt();
+            signatureAlgorithms.add(algorithm);
+            if (!isSupportedAlgorithm(algorithm)) {
+                continue;
+            }
+            if (bestAlgorithm == -1 || isStrongerAlgorithm(algorithm, bestAlgorithm)) {
+                bestAlgorithm = algorithm;
+                bestSignature = readLengthPrefixedBytes(signature);
+            }
+        }
+        if (bestAlgorithm == -1) {
+            throw new GeneralSecurityException("No supported signatures");
+        }
+
+        String keyAlgorithm = getKeyAlgorithm(bestAlgorithm);
+        PublicKey publicKey = KeyFactory.getInstance(keyAlgorithm)
+                .generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+        java.security.Signature sig = java.security.Signature.getInstance(
+                getSignatureAlgorithm(bestAlgorithm));
+        sig.initVerify(publicKey);
+        if (bestAlgorithm == SIGNATURE_RSA_PSS_WITH_SHA256) {
+            sig.setParameter(new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+        } else if (bestAlgorithm == SIGNATURE_RSA_PSS_WITH_SHA512) {
+            sig.setParameter(new PSSParameterSpec("SHA-512", "MGF1", MGF1ParameterSpec.SHA512, 64, 1));
+        }
+        sig.update(signedData.duplicate());
+        if (!sig.verify(bestSignature)) {
+            throw new GeneralSecurityException(keyAlgorithm + " signature did not verify");
+        }
+
+        ByteBuffer digests = getLengthPrefixedSlice(signedData);
+        byte[] contentDigest = null;
+        List<Integer> digestedAlgorithms = new ArrayList<>();
+        while (digests.hasRemaining()) {
+            ByteBuffer digest = getLengthPrefixedSlice(digests);
+            int algorithm = digest.getInt();
+            digestedAlgorithms.add(algorithm);
+            if (algorithm == bestAlgorithm) {
+                contentDigest = readLengthPrefixedBytes(digest);
+            }
+        }
+        if (!signatureAlgorithms.equals(digestedAlgorithms) || contentDigest == null) {
+            throw new GeneralSecurityException("Signature algorithms don't match between digests and signatures");
+        }
+
+        ByteBuffer encodedCertificates = getLengthPrefixedSlice(signedData);
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        if (!encodedCertificates.hasRemaining()) {
+            throw new GeneralSecurityException("No certificates listed");
+        }
+        byte[] firstCertificate = readLengthPrefixedBytes(encodedCertificates);
+        X509Certificate certificate = (X509Certificate) certificateFactory.generateCertificate(
+                new ByteArrayInputStream(firstCertificate));
+        if (!Arrays.equals(publicKeyBytes, certificate.getPublicKey().getEncoded())) {
+            throw new GeneralSecurityException("Public key mismatch between certificate and signature record");
+        }
+        certificates.add(firstCertificate);
+
+        String digestAlgorithm = getContentDigestAlgorithm(bestAlgorithm);
+        int index = digestAlgorithms.indexOf(digestAlgorithm);
+        if (index == -1) {
+            digestAlgorithms.add(digestAlgorithm);
+            expectedDigests.add(contentDigest);
+        } else if (!MessageDigest.isEqual(expectedDigests.get(index), contentDigest)) {
+            throw new GeneralSecurityException("Signers disagree on APK contents digest");
+        }
+    }
+
+    /**
+     * Computes the 1 MB chunked digest of the given contents, the chunks are digested in parallel
+     * and then digested again in order.
+     */
+    private static byte[] computeContentDigest(final String digestAlgorithm, final DataSource[] contents)
+            throws IOException, GeneralSecurityException {
+        long chunkCountLong = 0;
+        for (DataSource content : contents) {
+            chunkCountLong += (content.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+        if (chunkCountLong > Integer.MAX_VALUE / 64) {
+            throw new GeneralSecurityException("Too many chunks: " + chunkCountLong);
+        }
+        final int chunkCount = (int) chunkCountLong;
+        final int digestLength = MessageDigest.getInstance(digestAlgorithm).getDigestLength();
+        final byte[] chunkDigests = new byte[chunkCount * digestLength];
+        final long[] chunkStarts = new long[chunkCount];
+        final int[] chunkSources = new int[chunkCount];
+        int chunkIndex = 0;
+        for (int i = 0; i < contents.length; i++) {
+            for (long start = 0; start < contents[i].size(); start += CHUNK_SIZE) {
+                chunkStarts[chunkIndex] = start;
+                chunkSources[chunkIndex] = i;
+                chunkIndex++;
+            }
+        }
+
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), chunkCount));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, sThreadFactory);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                final int from = (int) ((long) chunkCount * t / threadCount);
+                final int to = (int) ((long) chunkCount * (t + 1) / threadCount);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        MessageDigest md = MessageDigest.getInstance(digestAlgorithm);
+                        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                        byte[] prefix = new byte[5];
+                        prefix[0] = (byte) 0xa5;
+                        for (int i = from; i < to; i++) {
+                            DataSource content = contents[chunkSources[i]];
+                            int size = (int) Math.min(CHUNK_SIZE, content.size() - chunkStarts[i]);
+                            setUnsignedInt32LittleEndian(size, prefix, 1);
+                            md.update(prefix);
+                            buffer.clear();
+                            buffer.limit(size);
+                            content.read(chunkStarts[i], buffer);
+                            buffer.flip();
+                            md.update(buffer);
+                            md.digest(chunkDigests, i * digestLength, digestLength);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while digesting APK contents");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new GeneralSecurityException("Failed to digest APK contents", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        MessageDigest md = MessageDigest.getInstance(digestAlgorithm);
+        byte[] prefix = new byte[5];
+        prefix[0] = 0x5a;
+        setUnsignedInt32LittleEndian(chunkCount, prefix, 1);
+        md.update(prefix);
+        md.update(chunkDigests);
+        return md.digest();
+    }
+
+    private static long findEocdOffset(RandomAccessFile apk) throws IOException, SignatureNotFoundException {
+        long fileSize = apk.length();
+        if (fileSize < EOCD_MIN_SIZE) {
+            throw new SignatureNotFoundException();
+        }
+        int maxCommentLength = (int) Math.min(MAX_COMMENT_LENGTH, fileSize - EOCD_MIN_SIZE);
+        ByteBuffer tail = read(apk.getChannel(), fileSize - EOCD_MIN_SIZE - maxCommentLength,
+                EOCD_MIN_SIZE + maxCommentLength);
+        int eocdStart = tail.capacity() - EOCD_MIN_SIZE;
+        for (int commentLength = 0; commentLength <= maxCommentLength; commentLength++) {
+            int position = eocdStart - commentLength;
+            if (tail.getInt(position) == EOCD_SIGNATURE
+                    && (tail.getShort(position + EOCD_COMMENT_LENGTH_OFFSET) & 0xffff) == commentLength) {
+                return fileSize - EOCD_MIN_SIZE - commentLength;
+            }
+        }
+        throw new SignatureNotFoundException();
+    }
+
+    private static ByteBuffer findV2Block(ByteBuffer pairs)
+            throws GeneralSecurityException, SignatureNotFoundException {
+        while (pairs.hasRemaining()) {
+            if (pairs.remaining() < 8) {
+                throw new GeneralSecurityException("Insufficient data to read size of APK Signing Block entry");
+            }
+            long length = pairs.getLong();
+            if (length < 4 || length > pairs.remaining()) {
+                throw new GeneralSecurityException("APK Signing Block entry size out of range: " + length);
+            }
+            int nextPosition = pairs.position() + (int) length;
+            int id = pairs.getInt();
+            if (id == APK_SIGNATURE_SCHEME_V2_BLOCK_ID) {
+                return slice(pairs, pairs.position(), nextPosition);
+            }
+            pairs.position(nextPosition);
+        }
+        throw new SignatureNotFoundException();
+    }
+
+    private static boolean isSupportedAlgorithm(int algorithm) {
+        switch (algorithm) {
+            case SIGNATURE_RSA_PSS_WITH_SHA256:
+            case SIGNATURE_RSA_PSS_WITH_SHA512:
+            case SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256:
+            case SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA512:
+            case SIGNATURE_ECDSA_WITH_SHA256:
+            case SIGNATURE_ECDSA_WITH_SHA512:
+            case SIGNATURE_DSA_WITH_SHA256:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isStrongerAlgorithm(int algorithm, int other) {
+        return "SHA-512".equals(getContentDigestAlgorithm(algorithm))
+                && "SHA-256".equals(getContentDigestAlgorithm(other));
+    }
+
+    private static String getContentDigestAlgorithm(int algorithm) {
+        switch (algorithm) {
+            case SIGNATURE_RSA_PSS_WITH_SHA512:
+            case SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA512:
+            case SIGNATURE_ECDSA_WITH_SHA512:
+                return "SHA-512";
+            default:
+                return "SHA-256";
+        }
+    }
+
+    private static String getKeyAlgorithm(int algorithm) {
+        switch (algorithm) {
+            case SIGNATURE_ECDSA_WITH_SHA256:
+            case SIGNATURE_ECDSA_WITH_SHA512:
+                return "EC";
+            case SIGNATURE_DSA_WITH_SHA256:
+                return "DSA";
+            default:
+                return "RSA";
+        }
+    }
+
+    private static String getSignatureAlgorithm(int algorithm) {
+        switch (algorithm) {
+            case SIGNATURE_RSA_PSS_WITH_SHA256:
+                return "SHA256withRSA/PSS";
+            case SIGNATURE_RSA_PSS_WITH_SHA512:
+                return "SHA512withRSA/PSS";
+            case SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256:
+                return "SHA256withRSA";
+            case SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA512:
+                return "SHA512withRSA";
+            case SIGNATURE_ECDSA_WITH_SHA256:
+                return "SHA256withECDSA";
+            case SIGNATURE_ECDSA_WITH_SHA512:
+                return "SHA512withECDSA";
+            default:
+                return "SHA256withDSA";
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer source, int start, int end) {
+        ByteBuffer duplicate = source.duplicate();
+        duplicate.position(0);
+        duplicate.limit(end);
+        duplicate.position(start);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer getLengthPrefixedSlice(ByteBuffer source) throws GeneralSecurityException {
+        if (source.remaining() < 4) {
+            throw new GeneralSecurityException("Remaining buffer too short to contain length of length-prefixed field");
+        }
+        int length = source.getInt();
+        if (length < 0 || length > source.remaining()) {
+            throw new GeneralSecurityException("Length-prefixed field longer than remaining buffer");
+        }
+        int start = source.position();
+        source.position(start + length);
+        return slice(source, start, start + length);
+    }
+
+    private static byte[] readLengthPrefixedBytes(ByteBuffer source) throws GeneralSecurityException {
+        ByteBuffer field = getLengthPrefixedSlice(source);
+        byte[] bytes = new byte[field.remaining()];
+        field.get(bytes);
+        return bytes;
+    }
+
+    private static void setUnsignedInt32LittleEndian(int value, byte[] result, int offset) {
+        result[offset] = (byte) (value & 0xff);
+        result[offset + 1] = (byte) ((value >>> 8) & 0xff);
+        result[offset + 2] = (byte) ((value >>> 16) & 0xff);
+        result[offset + 3] = (byte) ((value >>> 24) & 0xff);
+    }
+
+    private interface DataSource {
+        long size();
+
+        void read(long offset, ByteBuffer destination) throws IOException;
+    }
+
+    private static class FileDataSource implements DataSource {
+
+        private final FileChannel mChannel;
+        private final long mOffset;
+        private final long mSize;
+
+        FileDataSource(FileChannel channel, long offset, long size) {
+            mChannel = channel;
+            mOffset = offset;
+            mSize = size;
+        }
+
+        @Override
+        public long size() {
+            return mSize;
+        }
+
+        @Override
+        public void read(long offset, ByteBuffer destination) throws IOException {
+            long position = mOffset + offset;
+            while (destination.hasRemaining()) {
+                int count = mChannel.read(destination, position);
+                if (count == -1) {
+                    throw new IOException("Unexpected end of file");
+                }
+                position += count;
+            }
+        }
+    }
+
+    private static class ByteBufferDataSource implements DataSource {
+
+        private final ByteBuffer mBuffer;
+
+        ByteBufferDataSource(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public long size() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public void read(long offset, ByteBuffer destination) {
+            ByteBuffer source = mBuffer.duplicate();
+            source.position(source.position() + (int) offset);
+            source.limit(source.position() + destination.remaining());
+            destination.put(source);
+        }
+    }
+
+    static class SignatureNotFoundException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
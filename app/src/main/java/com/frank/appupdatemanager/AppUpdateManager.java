@@ -16,7 +16,9 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.support.v4.content.FileProvider;
@@ -32,34 +34,37 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.URI;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 public class AppUpdateManager {
 
-    private static final char[] HEX_CHAR_ARRAY = "0123456789abcdef".toCharArray();
     private static final String APP_UPDATE_TASK_ID = "app_update_task_id";
     private static final long NO_TASK = -1L;
     private static final int MSG_QUERY_PROGRESS = 1;
     private static final int MSG_SHOW_PROGRESS = 2;
     private static final int MSG_ERROR = 3;
+    private static final int MSG_RECONCILED = 4;
+    private static final int MSG_VERIFIED = 5;
     private volatile static AppUpdateManager instance;
 
     private WeakReference<Activity> mActivityRef;
     private Version mVersion;
     private DownloadManager mDownloadManager;
     private long mDownloadTaskId;
+    private long mVerifyingTaskId = NO_TASK;
+    private File mVerifiedApkFile;
     private SharedPreferences mSharedPreferences;
     private CompleteBroadcastReceiver mCompleteBroadcastReceiver;
     private ProgressHandler mProgressHandler;
@@ -71,6 +76,8 @@ public class AppUpdateManager {
     private WeakReference<Dialog> mInstallDialogRef;
     private WeakReference<Dialog> mRetryDialogRef;
     private List<WeakReference<Dialog>> mDialogList;
+    private final List<Subscription> mSubscriptionList = new CopyOnWriteArrayList<>();
+    private volatile UpdateState mLatestState;
     private static final ThreadFactory sThreadFactory = new ThreadFactory() {
         private final AtomicInteger mCount = new AtomicInteger(1);
 
@@ -107,13 +114,62 @@ public class AppUpdateManager {
             showDisableDialog();
             return this;
         }
-        mDownloadTaskId = mSharedPreferences.getLong(APP_UPDATE_TASK_ID, NO_TASK);
+        if (mThreadPool.isShutdown()) {
+            return this;
+        }
+        reconcileDownloads();
+        return this;
+    }
+
+    private void onDownloadsReconciled(long taskId) {
+        mDownloadTaskId = taskId;
+        mVerifyingTaskId = NO_TASK;
         if (mDownloadTaskId != NO_TASK) {
             mProgressHandler.sendEmptyMessage(MSG_QUERY_PROGRESS);
-            return this;
+            return;
         }
         showConfirmDialog();
-        return this;
+    }
+
+    /**
+     * Subscribes to update state and progress. All observers share the single progress query
+     * of this manager, and a slow observer only receives the latest state, intermediate states
+     * are dropped.
+     * <p>
+     * The observer is held strongly until {@link #unsubscribe(UpdateObserver)} or {@link #clear()}
+     * is called, an observer backed by an Activity must unsubscribe before it is destroyed.
+     *
+     * @param observer the observer to be notified
+     * @param handler  the handler whose thread the observer is notified on, or null for the main thread
+     */
+    public void subscribe(UpdateObserver observer, Handler handler) {
+        if (observer == null) {
+            return;
+        }
+        for (Subscription subscription : mSubscriptionList) {
+            if (subscription.mObserver == observer) {
+                return;
+            }
+        }
+        Subscription subscription = new Subscription(observer,
+                handler != null ? handler : new Handler(Looper.getMainLooper()));
+        mSubscriptionList.add(subscription);
+        if (mLatestState != null) {
+            subscription.dispatch();
+        }
+    }
+
+    public void unsubscribe(UpdateObserver observer) {
+        for (Subscription subscription : mSubscriptionList) {
+            if (subscription.mObserver == observer) {
+                subscription.cancel();
+                mSubscriptionList.remove(subscription);
+            }
+        }
+    }
+
+    public UpdateState getLatestState() {
+        return mLatestState;
     }
 
     public void clear() {
@@ -123,6 +179,10 @@ public class AppUpdateManager {
             mCompleteBroadcastReceiver = null;
         }
         mProgressHandler.removeCallbacksAndMessages(null);
+        for (Subscription subscription : mSubscriptionList) {
+            subscription.cancel();
+        }
+        mSubscriptionList.clear();
         mThreadPool.shutdown();
         clearDialog();
         instance = null;
@@ -140,12 +200,154 @@ public class AppUpdateManager {
         }
         String filename = activity.getString(R.string.app_name) + mVersion.getName() + ".apk";
         DownloadManager.Request request = new DownloadManager.Request(Uri.parse(mVersion.getUrl()))
-                .setDestinationInExternalFilesDir(activity, Environment.DIRECTORY_DOWNLOADS, filename);
+                .setDestinationInExternalFilesDir(activity, Environment.DIRECTORY_DOWNLOADS, filename)
+                .setDescription(activity.getString(R.string.download_description));
         mDownloadTaskId = mDownloadManager.enqueue(request);
         mSharedPreferences.edit().putLong(APP_UPDATE_TASK_ID, mDownloadTaskId).apply();
         mProgressHandler.sendEmptyMessage(MSG_QUERY_PROGRESS);
     }
 
+    /**
+     * Finds all update downloads of this app with one query, adopts the one of the current version
+     * and removes the others together with their files, so that a crash between enqueue and saving
+     * the task id doesn't leave orphaned downloads behind. Downloads of the current version are
+     * recognized by URL, older ones by the description set in {@link #startDownload()}.
+     */
+    private void reconcileDownloads() {
+        mThreadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                int priority = Process.getThreadPriority(Process.myTid());
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long taskId = mSharedPreferences.getLong(APP_UPDATE_TASK_ID, NO_TASK);
+                Cursor cursor = null;
+                try {
+                    Activity activity = mActivityRef.get();
+                    if (activity == null) {
+                        return;
+                    }
+                    File downloadDir = activity.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS);
+                    if (downloadDir != null) {
+                        downloadDir = downloadDir.getCanonicalFile();
+                    }
+                    String prefix = activity.getString(R.string.app_name);
+                    long adoptedId = NO_TASK;
+                    int adoptedRank = -1;
+                    File adoptedFile = null;
+                    List<Long> orphanIdList = new ArrayList<>();
+                    List<File> orphanFileList = new ArrayList<>();
+                    cursor = mDownloadManager.query(new DownloadManager.Query());
+                    if (cursor == null) {
+                        return;
+                    }
+                    int idIndex = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_ID);
+                    int uriIndex = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_URI);
+                    int localUriIndex = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_LOCAL_URI);
+                    int statusIndex = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_STATUS);
+                    int descriptionIndex = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_DESCRIPTION);
+                    String description = activity.getString(R.string.download_description);
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(idIndex);
+                        // The local file is unknown until a download actually starts.
+                        File file = getLocalFile(cursor.getString(localUriIndex));
+                        if (!mVersion.getUrl().equals(cursor.getString(uriIndex))) {
+                            // Downloads enqueued before they were tagged are only known by file name.
+                            if (description.equals(cursor.getString(descriptionIndex))
+                                    || isUpdateFile(file, downloadDir, prefix)) {
+                                orphanIdList.add(id);
+                                orphanFileList.add(file);
+                            }
+                            continue;
+                        }
+                        int rank = getStatusRank(cursor.getInt(statusIndex));
+                        if (rank > adoptedRank || (rank == adoptedRank && id == taskId)) {
+                            if (adoptedId != NO_TASK) {
+                                orphanIdList.add(adoptedId);
+                                orphanFileList.add(adoptedFile);
+                            }
+                            adoptedId = id;
+                            adoptedRank = rank;
+                            adoptedFile = file;
+                        } else {
+                            orphanIdList.add(id);
+                            orphanFileList.add(file);
+                        }
+                    }
+                    taskId = adoptedId;
+                    mSharedPreferences.edit().putLong(APP_UPDATE_TASK_ID, taskId).commit();
+                    if (adoptedId == NO_TASK) {
+                        publishState(new UpdateState(UpdateState.STATUS_NONE, -1, -1, 0));
+                    }
+                    if (!orphanIdList.isEmpty()) {
+                        long[] orphanIds = new long[orphanIdList.size()];
+                        for (int i = 0; i < orphanIds.length; i++) {
+                            orphanIds[i] = orphanIdList.get(i);
+                        }
+                        mDownloadManager.remove(orphanIds);
+                    }
+                    for (File file : orphanFileList) {
+                        if (file != null && !file.equals(adoptedFile) && file.exists()) {
+                            file.delete();
+                        }
+                    }
+                    // Only sweep leftovers of the current version when the adopted file is known.
+                    File[] files = downloadDir != null ? downloadDir.listFiles() : null;
+                    if (files != null && (adoptedId == NO_TASK || adoptedFile != null)) {
+                        Pattern namePattern = Pattern.compile(
+                                Pattern.quote(prefix + mVersion.getName()) + "(-\\d+)?\\.apk");
+                        for (File file : files) {
+                            file = file.getCanonicalFile();
+                            if (namePattern.matcher(file.getName()).matches() && !file.equals(adoptedFile)) {
+                                file.delete();
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+                    Process.setThreadPriority(priority);
+                    Message message = mProgressHandler.obtainMessage(MSG_RECONCILED);
+                    message.obj = taskId;
+                    mProgressHandler.sendMessage(message);
+                }
+            }
+        });
+    }
+
+    private File getLocalFile(String localUri) {
+        if (localUri == null) {
+            return null;
+        }
+        try {
+            return new File(new URI(localUri)).getCanonicalFile();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private boolean isUpdateFile(File file, File downloadDir, String prefix) {
+        return file != null && downloadDir != null && downloadDir.equals(file.getParentFile())
+                && file.getName().startsWith(prefix) && file.getName().endsWith(".apk");
+    }
+
+    private int getStatusRank(int status) {
+        switch (status) {
+            case DownloadManager.STATUS_SUCCESSFUL:
+                return 4;
+            case DownloadManager.STATUS_RUNNING:
+                return 3;
+            case DownloadManager.STATUS_PENDING:
+                return 2;
+            case DownloadManager.STATUS_PAUSED:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
     private void onDownloadCompleted() {
         Activity activity = mActivityRef.get();
         if (activity == null) {
@@ -158,9 +360,19 @@ public class AppUpdateManager {
         mProgressHandler.removeCallbacksAndMessages(null);
         dismissProgressDialog();
         mSharedPreferences.edit().putLong(APP_UPDATE_TASK_ID, NO_TASK).apply();
-        if (mThreadPool.isShutdown()) {
+        verifyDownload(false);
+    }
+
+    /**
+     * Verifies the downloaded APK off the main thread, then installs it directly or asks first.
+     * A task is only verified once, even if both the completion broadcast and a progress query
+     * that was already in flight report it.
+     */
+    private void verifyDownload(final boolean confirm) {
+        if (mThreadPool.isShutdown() || mVerifyingTaskId == mDownloadTaskId) {
             return;
         }
+        mVerifyingTaskId = mDownloadTaskId;
         mThreadPool.execute(new Runnable() {
             @Override
             public void run() {
@@ -172,30 +384,52 @@ public class AppUpdateManager {
                 }
                 try {
                     cursor = mDownloadManager.query(query);
-                    if (cursor != null && cursor.moveToFirst()) {
+                    if (cursor == null) {
+                        return;
+                    }
+                    if (!cursor.moveToFirst()) {
+                        publishState(new UpdateState(UpdateState.STATUS_NONE, -1, -1, 0));
+                        return;
+                    }
+                    // ACTION_DOWNLOAD_COMPLETE is also sent for failed downloads.
+                    int status = cursor.getInt(cursor.getColumnIndexOrThrow(
+                            DownloadManager.COLUMN_STATUS));
+                    long bytes = cursor.getLong(cursor.getColumnIndexOrThrow(
+                            DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
+                    long total = cursor.getLong(cursor.getColumnIndexOrThrow(
+                            DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
+                    if (DownloadManager.STATUS_FAILED == status) {
+                        int reason = cursor.getInt(cursor.getColumnIndexOrThrow(
+                                DownloadManager.COLUMN_REASON));
+                        publishState(new UpdateState(status, bytes, total, reason));
+                        Message message = mProgressHandler.obtainMessage(MSG_ERROR);
+                        message.obj = activity.getString(R.string.download_manager_failed_tips);
+                        mProgressHandler.sendMessage(message);
+                    } else if (DownloadManager.STATUS_SUCCESSFUL != status) {
+                        publishState(new UpdateState(status, bytes, total, 0));
+                    } else {
+                        publishState(new UpdateState(status, total, total, 0));
                         String localUri = cursor.getString(cursor.getColumnIndexOrThrow(
                                 DownloadManager.COLUMN_LOCAL_URI));
-                        Intent installIntent = new Intent(Intent.ACTION_VIEW);
                         File apkFile = new File(new URI(localUri));
-                        String checksum = getChecksum(apkFile);
-                        if (checksum == null || !checksum.equals(mVersion.getChecksum())) {
+                        if (!ApkSignatureVerifier.verify(activity, apkFile)) {
+                            // Drop the rejected APK, otherwise it is adopted again by every update().
+                            mDownloadManager.remove(mDownloadTaskId);
+                            mSharedPreferences.edit().putLong(APP_UPDATE_TASK_ID, NO_TASK).apply();
+                            publishState(new UpdateState(UpdateState.STATUS_VERIFICATION_FAILED, -1, -1, 0));
                             Message message = mProgressHandler.obtainMessage(MSG_ERROR);
-                            message.obj = activity.getString(R.string.check_files_failed_tips);
+                            message.obj = activity.getString(R.string.check_signature_failed_tips);
                             mProgressHandler.sendMessage(message);
                             return;
                         }
-                        Uri contentUri = FileProvider.getUriForFile(activity,
-                                "com.frank.appupdatemanager.fileprovider", apkFile);
-                        installIntent.setDataAndType(contentUri,
-                                "application/vnd.android.package-archive");
-                        installIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                        installIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                        if (installIntent.resolveActivity(activity.getPackageManager()) != null) {
-                            activity.startActivity(installIntent);
-                        }
+                        Message message = mProgressHandler.obtainMessage(MSG_VERIFIED);
+                        message.arg1 = confirm ? 1 : 0;
+                        message.obj = apkFile;
+                        mProgressHandler.sendMessage(message);
                     }
                 } catch (Exception e) {
                     e.printStackTrace();
+                    publishState(new UpdateState(UpdateState.STATUS_VERIFICATION_FAILED, -1, -1, 0));
                     Message message = mProgressHandler.obtainMessage(MSG_ERROR);
                     message.obj = activity.getString(R.string.download_apk_failed_tips);
                     mProgressHandler.sendMessage(message);
@@ -208,6 +442,41 @@ public class AppUpdateManager {
         });
     }
 
+    private void onDownloadVerified(File apkFile, boolean confirm) {
+        mVerifiedApkFile = apkFile;
+        if (confirm) {
+            showInstallDialog();
+        } else {
+            installApk();
+        }
+    }
+
+    private void installApk() {
+        Activity activity = mActivityRef.get();
+        if (activity == null || mVerifiedApkFile == null) {
+            return;
+        }
+        mSharedPreferences.edit().putLong(APP_UPDATE_TASK_ID, NO_TASK).apply();
+        try {
+            Uri contentUri = FileProvider.getUriForFile(activity,
+                    "com.frank.appupdatemanager.fileprovider", mVerifiedApkFile);
+            Intent installIntent = new Intent(Intent.ACTION_VIEW);
+            installIntent.setDataAndType(contentUri, "application/vnd.android.package-archive");
+            installIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            installIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            if (installIntent.resolveActivity(activity.getPackageManager()) != null) {
+                activity.startActivity(installIntent);
+                publishState(new UpdateState(UpdateState.STATUS_INSTALLING, -1, -1, 0));
+            } else {
+                publishState(new UpdateState(UpdateState.STATUS_INSTALL_FAILED, -1, -1, 0));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            publishState(new UpdateState(UpdateState.STATUS_INSTALL_FAILED, -1, -1, 0));
+            showRetryDialog(activity.getString(R.string.download_apk_failed_tips));
+        }
+    }
+
     private void queryProgress() {
         mThreadPool.execute(new Runnable() {
             @Override
@@ -219,18 +488,27 @@ public class AppUpdateManager {
                     if (cursor == null) {
                         return;
                     }
-                    if (cursor.moveToFirst()) {
-                        int bytes = cursor.getInt(cursor.getColumnIndexOrThrow(
+                    if (!cursor.moveToFirst()) {
+                        publishState(new UpdateState(UpdateState.STATUS_NONE, -1, -1, 0));
+                    } else {
+                        long bytes = cursor.getLong(cursor.getColumnIndexOrThrow(
                                 DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
-                        int total = cursor.getInt(cursor.getColumnIndexOrThrow(
+                        long total = cursor.getLong(cursor.getColumnIndexOrThrow(
                                 DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
                         int status = cursor.getInt(cursor.getColumnIndexOrThrow(
                                 DownloadManager.COLUMN_STATUS));
                         Message message = mProgressHandler.obtainMessage(MSG_SHOW_PROGRESS);
-                        message.arg1 = bytes;
-                        message.arg2 = total;
+                        message.arg1 = (int) bytes;
+                        message.arg2 = (int) total;
                         message.obj = status;
                         mProgressHandler.sendMessage(message);
+                        int reason = 0;
+                        if (DownloadManager.STATUS_PAUSED == status
+                                || DownloadManager.STATUS_FAILED == status) {
+                            reason = cursor.getInt(cursor.getColumnIndexOrThrow(
+                                    DownloadManager.COLUMN_REASON));
+                        }
+                        publishState(new UpdateState(status, bytes, total, reason));
                         if (DownloadManager.STATUS_PENDING == status
                                 || DownloadManager.STATUS_RUNNING == status
                                 || DownloadManager.STATUS_PAUSED == status) {
@@ -238,8 +516,6 @@ public class AppUpdateManager {
                         } else if (DownloadManager.STATUS_SUCCESSFUL == status) {
                             mProgressHandler.removeMessages(MSG_QUERY_PROGRESS);
                         } else if (DownloadManager.STATUS_FAILED == status) {
-                            int errorCode = cursor.getInt(cursor.getColumnIndexOrThrow(
-                                    DownloadManager.COLUMN_REASON));
                             mProgressHandler.removeMessages(MSG_QUERY_PROGRESS);
                         }
                     }
@@ -254,6 +530,13 @@ public class AppUpdateManager {
         });
     }
 
+    private void publishState(UpdateState state) {
+        mLatestState = state;
+        for (Subscription subscription : mSubscriptionList) {
+            subscription.dispatch();
+        }
+    }
+
     private void showProgress(int status, int bytes, int total) {
         if (DownloadManager.STATUS_PENDING == status
                 || DownloadManager.STATUS_RUNNING == status
@@ -261,7 +544,7 @@ public class AppUpdateManager {
             showProgressDialog(bytes, total);
         } else if (DownloadManager.STATUS_SUCCESSFUL == status) {
             dismissProgressDialog();
-            showInstallDialog();
+            verifyDownload(mCompleteBroadcastReceiver == null);
         } else if (DownloadManager.STATUS_FAILED == status) {
             Activity activity = mActivityRef.get();
             if (activity != null) {
@@ -417,7 +700,7 @@ public class AppUpdateManager {
                     .setPositiveButton(R.string.install, new DialogInterface.OnClickListener() {
                         @Override
                         public void onClick(DialogInterface dialog, int which) {
-                            onDownloadCompleted();
+                            installApk();
                             dialog.dismiss();
                         }
                     })
@@ -510,36 +793,6 @@ public class AppUpdateManager {
         return true;
     }
 
-    private String getChecksum(File file) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            InputStream fis = new FileInputStream(file);
-            byte[] buffer = new byte[1024];
-            int numRead;
-            do {
-                numRead = fis.read(buffer);
-                if (numRead > 0) {
-                    md.update(buffer, 0, numRead);
-                }
-            } while (numRead != -1);
-            fis.close();
-            return bytesToHex(md.digest());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    private String bytesToHex(byte[] bytes) {
-        char[] hexChars = new char[bytes.length * 2];
-        for (int j = 0; j < bytes.length; j++) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = HEX_CHAR_ARRAY[v >>> 4];
-            hexChars[j * 2 + 1] = HEX_CHAR_ARRAY[v & 0x0F];
-        }
-        return new String(hexChars);
-    }
-
     private void addDialog(WeakReference<Dialog> dialogRef) {
         if (mDialogList == null) {
             mDialogList = new ArrayList<>();
@@ -585,6 +838,12 @@ public class AppUpdateManager {
                     case MSG_ERROR:
                         appUpdateManager.showRetryDialog((String) msg.obj);
                         break;
+                    case MSG_RECONCILED:
+                        appUpdateManager.onDownloadsReconciled((Long) msg.obj);
+                        break;
+                    case MSG_VERIFIED:
+                        appUpdateManager.onDownloadVerified((File) msg.obj, msg.arg1 == 1);
+                        break;
                     default:
                         break;
                 }
@@ -592,6 +851,42 @@ public class AppUpdateManager {
         }
     }
 
+    private class Subscription implements Runnable {
+
+        private final UpdateObserver mObserver;
+        private final Handler mHandler;
+        private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+        private volatile boolean mCanceled;
+        private UpdateState mDeliveredState;
+
+        Subscription(UpdateObserver observer, Handler handler) {
+            mObserver = observer;
+            mHandler = handler;
+        }
+
+        void dispatch() {
+            if (!mCanceled && mScheduled.compareAndSet(false, true)) {
+                mHandler.post(this);
+            }
+        }
+
+        void cancel() {
+            mCanceled = true;
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            mScheduled.set(false);
+            UpdateState state = mLatestState;
+            if (mCanceled || state == null || state.equals(mDeliveredState)) {
+                return;
+            }
+            mDeliveredState = state;
+            mObserver.onUpdateStateChanged(state);
+        }
+    }
+
     private class CompleteBroadcastReceiver extends BroadcastReceiver {
 
         @Override
@@ -610,7 +905,101 @@ public class AppUpdateManager {
 
         String getUrl();
 
+        /**
+         * @deprecated the downloaded APK is verified against the signing certificates of this app
+         * instead, the checksum is no longer used.
+         */
+        @Deprecated
         String getChecksum();
     }
 
+    public interface UpdateObserver {
+        void onUpdateStateChanged(UpdateState state);
+    }
+
+    public static final class UpdateState {
+
+        /**
+         * There is no download task, it has never been started or has been removed.
+         */
+        public static final int STATUS_NONE = 0;
+
+        /**
+         * The download is completed but the APK is not signed by this app, it will not be installed.
+         */
+        public static final int STATUS_VERIFICATION_FAILED = 1 << 8;
+
+        /**
+         * The verified APK has been handed to the system installer.
+         */
+        public static final int STATUS_INSTALLING = 1 << 9;
+
+        /**
+         * The verified APK could not be handed to the system installer.
+         */
+        public static final int STATUS_INSTALL_FAILED = 1 << 10;
+
+        private final int mStatus;
+        private final long mBytes;
+        private final long mTotal;
+        private final int mReason;
+
+        UpdateState(int status, long bytes, long total, int reason) {
+            mStatus = status;
+            mBytes = bytes;
+            mTotal = total;
+            mReason = reason;
+        }
+
+        /**
+         * @return one of the {@code STATUS_*} constants of this class or of {@code DownloadManager}
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * @return downloaded bytes, or -1 if unknown
+         */
+        public long getBytes() {
+            return mBytes;
+        }
+
+        /**
+         * @return total bytes, or -1 if unknown
+         */
+        public long getTotal() {
+            return mTotal;
+        }
+
+        /**
+         * @return the {@code DownloadManager.COLUMN_REASON} of a paused or failed download, otherwise 0
+         */
+        public int getReason() {
+            return mReason;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            UpdateState that = (UpdateState) o;
+            return mStatus == that.mStatus && mBytes == that.mBytes
+                    && mTotal == that.mTotal && mReason == that.mReason;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mStatus;
+            result = 31 * result + (int) (mBytes ^ (mBytes >>> 32));
+            result = 31 * result + (int) (mTotal ^ (mTotal >>> 32));
+            result = 31 * result + mReason;
+            return result;
+        }
+    }
+
 }
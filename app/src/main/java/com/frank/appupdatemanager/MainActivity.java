@@ -32,6 +32,7 @@ public class MainActivity extends AppCompatActivity {
                                 return "https://";
                             }
 
+                            @Deprecated
                             @Override
                             public String getChecksum() {
                                 return "be3575f52431fecb2b40d9c948bf33e6";
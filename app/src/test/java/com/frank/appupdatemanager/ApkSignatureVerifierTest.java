@@ -0,0 +1,331 @@
+package com.frank.appupdatemanager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the APK Signature Scheme v2 verification of {@link ApkSignatureVerifier}.
+ */
+public class ApkSignatureVerifierTest {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256 = 0x0103;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private PrivateKey privateKey;
+    private byte[] certificate;
+
+    @Before
+    public void setUp() throws Exception {
+        privateKey = KeyFactory.getInstance("RSA").generatePrivate(
+                new PKCS8EncodedKeySpec(readResource("v2-signer.pk8")));
+        certificate = readResource("v2-signer.der");
+    }
+
+    @Test
+    public void verify_fixtureApk() throws Exception {
+        List<byte[]> certificates = verify(write(readResource("v2-signed.apk")));
+        assertEquals(1, certificates.size());
+        assertArrayEquals(certificate, certificates.get(0));
+    }
+
+    @Test
+    public void verify_singleChunk() throws Exception {
+        byte[] apk = sign(createZip(64 * 1024), certificate);
+        // One chunk for each of the contents, central directory and EOCD sections.
+        assertEquals(3, countChunks(apk));
+        List<byte[]> certificates = verify(write(apk));
+        assertEquals(1, certificates.size());
+        assertArrayEquals(certificate, certificates.get(0));
+    }
+
+    @Test
+    public void verify_multipleChunks() throws Exception {
+        byte[] apk = sign(createZip(5 * CHUNK_SIZE + 123), certificate);
+        assertEquals(8, countChunks(apk));
+        List<byte[]> certificates = verify(write(apk));
+        assertEquals(1, certificates.size());
+        assertArrayEquals(certificate, certificates.get(0));
+    }
+
+    @Test
+    public void verify_certificateChain_returnsLeafOnly() throws Exception {
+        byte[] apk = sign(createZip(1024), certificate, readResource("v2-ca.der"));
+        List<byte[]> certificates = verify(write(apk));
+        assertEquals(1, certificates.size());
+        assertArrayEquals(certificate, certificates.get(0));
+    }
+
+    @Test
+    public void verify_tamperedByte() throws Exception {
+        byte[] apk = sign(createZip(3 * CHUNK_SIZE), certificate);
+        apk[2 * CHUNK_SIZE + 7] ^= 1;
+        assertRejected(write(apk));
+    }
+
+    @Test
+    public void verify_tamperedCentralDirectory() throws Exception {
+        byte[] apk = sign(createZip(1024), certificate);
+        int cdOffset = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getInt(findEocd(apk) + 16);
+        apk[cdOffset + 10] ^= 1;
+        assertRejected(write(apk));
+    }
+
+    @Test
+    public void verify_garbageSigningBlock() throws Exception {
+        byte[] apk = sign(createZip(1024), certificate);
+        int cdOffset = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getInt(findEocd(apk) + 16);
+        long blockSize = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getLong(cdOffset - 24);
+        int blockOffset = (int) (cdOffset - blockSize - 8);
+        // Keep the size fields and the magic, scramble the pairs in between.
+        Random random = new Random(42);
+        for (int i = blockOffset + 8 + 12; i < cdOffset - 24; i++) {
+            apk[i] = (byte) random.nextInt();
+        }
+        assertRejected(write(apk));
+    }
+
+    @Test
+    public void verify_truncatedSigningBlock() throws Exception {
+        byte[] apk = sign(createZip(1024), certificate);
+        int cdOffset = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getInt(findEocd(apk) + 16);
+        ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).putLong(cdOffset - 24, cdOffset * 2L);
+        assertRejected(write(apk));
+    }
+
+    @Test
+    public void verify_signingBlockSizesMismatch() throws Exception {
+        byte[] apk = sign(createZip(1024), certificate);
+        int cdOffset = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getInt(findEocd(apk) + 16);
+        long blockSize = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getLong(cdOffset - 24);
+        int blockOffset = (int) (cdOffset - blockSize - 8);
+        ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).putLong(blockOffset, blockSize - 8);
+        assertRejected(write(apk));
+    }
+
+    @Test(expected = ApkSignatureVerifier.SignatureNotFoundException.class)
+    public void verify_noSigningBlock() throws Exception {
+        verify(write(createZip(1024)));
+    }
+
+    @Test(expected = ApkSignatureVerifier.SignatureNotFoundException.class)
+    public void verify_truncatedFile() throws Exception {
+        byte[] apk = sign(createZip(1024), certificate);
+        byte[] truncated = new byte[apk.length - 10];
+        System.arraycopy(apk, 0, truncated, 0, truncated.length);
+        verify(write(truncated));
+    }
+
+    private void assertRejected(File apk) throws Exception {
+        try {
+            verify(apk);
+            fail("Expected the APK to be rejected");
+        } catch (GeneralSecurityException | BufferUnderflowException e) {
+            // Expected
+        }
+    }
+
+    private List<byte[]> verify(File apk) throws Exception {
+        RandomAccessFile file = new RandomAccessFile(apk, "r");
+        try {
+            return ApkSignatureVerifier.verifyV2Signature(file);
+        } finally {
+            file.close();
+        }
+    }
+
+    private File write(byte[] bytes) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private byte[] readResource(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] createZip(int payloadSize) throws IOException {
+        byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        putStoredEntry(zip, "AndroidManifest.xml", new byte[]{1, 2, 3});
+        putStoredEntry(zip, "classes.dex", payload);
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private static void putStoredEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static int findEocd(byte[] apk) {
+        for (int i = apk.length - 22; i >= 0; i--) {
+            if (apk[i] == 0x50 && apk[i + 1] == 0x4b && apk[i + 2] == 0x05 && apk[i + 3] == 0x06) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a ZIP file");
+    }
+
+    private static int countChunks(byte[] apk) {
+        int eocd = findEocd(apk);
+        int cdOffset = ByteBuffer.wrap(apk).order(ByteOrder.LITTLE_ENDIAN).getInt(eocd + 16);
+        return (cdOffset + CHUNK_SIZE - 1) / CHUNK_SIZE + 2;
+    }
+
+    /**
+     * Inserts an APK Signing Block with a single v2 signer, digesting the chunks sequentially.
+     */
+    private byte[] sign(byte[] zip, byte[]... certificates) throws Exception {
+        int eocd = findEocd(zip);
+        int cdOffset = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN).getInt(eocd + 16);
+        byte[] beforeCd = copyOfRange(zip, 0, cdOffset);
+        byte[] cd = copyOfRange(zip, cdOffset, eocd);
+        byte[] eocdBytes = copyOfRange(zip, eocd, zip.length);
+
+        // The signing block size doesn't depend on the digest or signature values.
+        int blockSize = createSigningBlock(new byte[32], certificates).length;
+        ByteBuffer.wrap(eocdBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(16, cdOffset);
+        byte[] digest = contentDigest(beforeCd, cd, eocdBytes);
+        byte[] block = createSigningBlock(digest, certificates);
+        assertEquals(blockSize, block.length);
+        ByteBuffer.wrap(eocdBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(16, cdOffset + block.length);
+
+        ByteArrayOutputStream apk = new ByteArrayOutputStream();
+        apk.write(beforeCd);
+        apk.write(block);
+        apk.write(cd);
+        apk.write(eocdBytes);
+        return apk.toByteArray();
+    }
+
+    private byte[] createSigningBlock(byte[] digest, byte[]... certificates) throws Exception {
+        ByteArrayOutputStream encodedCertificates = new ByteArrayOutputStream();
+        for (byte[] certificate : certificates) {
+            encodedCertificates.write(lengthPrefixed(certificate));
+        }
+        byte[] signedData = concat(
+                lengthPrefixed(lengthPrefixed(concat(uint32(SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256),
+                        lengthPrefixed(digest)))),
+                lengthPrefixed(encodedCertificates.toByteArray()),
+                lengthPrefixed(new byte[0]));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(signedData);
+        byte[] publicKey = CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(certificates[0]))
+                .getPublicKey().getEncoded();
+        byte[] signer = concat(
+                lengthPrefixed(signedData),
+                lengthPrefixed(lengthPrefixed(concat(uint32(SIGNATURE_RSA_PKCS1_V1_5_WITH_SHA256),
+                        lengthPrefixed(signature.sign())))),
+                lengthPrefixed(publicKey));
+        byte[] v2Block = lengthPrefixed(lengthPrefixed(signer));
+        byte[] pair = concat(uint64(4 + v2Block.length), uint32(0x7109871a), v2Block);
+        long size = pair.length + 8 + 16;
+        return concat(uint64(size), pair, uint64(size), "APK Sig Block 42".getBytes("US-ASCII"));
+    }
+
+    private static byte[] contentDigest(byte[]... sections) throws Exception {
+        ByteArrayOutputStream chunkDigests = new ByteArrayOutputStream();
+        int chunkCount = 0;
+        for (byte[] section : sections) {
+            for (int start = 0; start < section.length; start += CHUNK_SIZE) {
+                int size = Math.min(CHUNK_SIZE, section.length - start);
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update((byte) 0xa5);
+                md.update(uint32(size));
+                md.update(section, start, size);
+                chunkDigests.write(md.digest());
+                chunkCount++;
+            }
+        }
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update((byte) 0x5a);
+        md.update(uint32(chunkCount));
+        md.update(chunkDigests.toByteArray());
+        return md.digest();
+    }
+
+    private static byte[] lengthPrefixed(byte[] bytes) throws IOException {
+        return concat(uint32(bytes.length), bytes);
+    }
+
+    private static byte[] uint32(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    private static byte[] uint64(long value) {
+        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] copyOfRange(byte[] bytes, int from, int to) {
+        byte[] copy = new byte[to - from];
+        System.arraycopy(bytes, from, copy, 0, copy.length);
+        return copy;
+    }
+}